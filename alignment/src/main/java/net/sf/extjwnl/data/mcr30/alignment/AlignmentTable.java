@@ -1,6 +1,7 @@
 package net.sf.extjwnl.data.mcr30.alignment;
 
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import net.sf.extjwnl.data.*;
 
@@ -31,6 +32,16 @@ abstract class AlignmentTable
     {
         addMapping(pos, first, second, true);
     }
+
+    /**
+     * Collects the tables which are actually probed by a lookup, in order.
+     *
+     * @param stages list to which the tables are appended
+     */
+    void collectStages(final List<AlignmentTable> stages)
+    {
+        stages.add(this);
+    }
 }
 
 /**
@@ -82,6 +93,12 @@ class CompositionAlignmentTable extends AlignmentTable
         throw new UnsupportedOperationException();
     }
         
+    @Override void collectStages(final List<AlignmentTable> stages)
+    {
+        t1.collectStages(stages);
+        t2.collectStages(stages);
+    }
+
     @Override Long lookup(POS pos, long first)
     {
         final Long offset = t1.lookup(pos, first);
@@ -92,3 +109,243 @@ class CompositionAlignmentTable extends AlignmentTable
         }
     }
 }
+
+/**
+ * AlignmentTable implementation which layers runtime corrections over an
+ * underlying table.  A table and its reverse share one immutable snapshot of
+ * corrections for both directions, and each update publishes a new snapshot
+ * with a single atomic swap, so lookups never block and never observe a
+ * partially applied update.  Updates copy only the corrections, never the
+ * underlying table.
+ */
+class OverlayAlignmentTable extends AlignmentTable
+{
+    /**
+     * Correction value which hides a mapping of the underlying table.
+     */
+    static final long REMOVED = -1;
+
+    private final AlignmentTable base;
+
+    private final boolean forward;
+
+    private final AtomicReference<OverlaySnapshot> snapshot;
+
+    private OverlayAlignmentTable(
+        final AlignmentTable base,
+        final boolean forward,
+        final AtomicReference<OverlaySnapshot> snapshot)
+    {
+        this.base = base;
+        this.forward = forward;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Wraps a table and its reverse.
+     *
+     * @return overlay for <code>base</code>, already linked to an overlay
+     * for its reverse
+     */
+    static OverlayAlignmentTable wrap(final AlignmentTable base)
+    {
+        final AtomicReference<OverlaySnapshot> snapshot =
+            new AtomicReference<>(new OverlaySnapshot());
+        final OverlayAlignmentTable table = new OverlayAlignmentTable(base, true, snapshot);
+        table.linkReverse(new OverlayAlignmentTable(base.getReverse(), false, snapshot));
+        return table;
+    }
+
+    @Override void addMapping(POS pos, long first, long second, boolean withReverse)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override Long lookup(final POS pos, final long first)
+    {
+        return lookup(snapshot.get(), pos, first);
+    }
+
+    /**
+     * Applies corrections on top of those already present.  Each correction
+     * replaces (or, if {@link #REMOVED}, hides) the mapping of its key, and
+     * the reverse table is adjusted to match.  Only the parts of speech
+     * the corrections touch are copied for the new snapshot.
+     *
+     *<p>
+     *
+     * If <code>name</code> is not null and an overlay of that name was
+     * applied before (to either direction), that overlay's corrections are
+     * dropped, and the remaining overlays are reapplied to the underlying
+     * table before the new corrections are applied last.
+     *
+     * @param name name of the overlay, or null for an overlay which
+     * cannot be replaced
+     *
+     * @param corrections new mappings by part of speech, in the order
+     * they should be applied; retained, and not to be modified afterwards
+     */
+    void applyOverlay(final String name, final Map<POS, Map<Long, Long>> corrections)
+    {
+        final OverlaySnapshot.Overlay overlay =
+            new OverlaySnapshot.Overlay(name, forward, corrections);
+        synchronized(snapshot) {
+            final OverlaySnapshot current = snapshot.get();
+            final OverlaySnapshot next;
+            if ((name != null) && current.contains(name)) {
+                next = new OverlaySnapshot();
+                for (OverlaySnapshot.Overlay previous : current.getOverlays()) {
+                    if (!name.equals(previous.name)) {
+                        apply(next, previous);
+                    }
+                }
+            } else {
+                next = new OverlaySnapshot(current);
+            }
+            apply(next, overlay);
+            snapshot.set(next);
+        }
+    }
+
+    /**
+     * Drops the corrections of all overlays applied to either direction.
+     */
+    void clearOverlays()
+    {
+        synchronized(snapshot) {
+            snapshot.set(new OverlaySnapshot());
+        }
+    }
+
+    private void apply(final OverlaySnapshot next, final OverlaySnapshot.Overlay overlay)
+    {
+        if (overlay.forward != forward) {
+            ((OverlayAlignmentTable) getReverse()).apply(next, overlay);
+            return;
+        }
+        final OverlayAlignmentTable reverseTable = (OverlayAlignmentTable) getReverse();
+        for (Map.Entry<POS, Map<Long, Long>> posEntry : overlay.corrections.entrySet()) {
+            final POS pos = posEntry.getKey();
+            for (Map.Entry<Long, Long> entry : posEntry.getValue().entrySet()) {
+                final long first = entry.getKey();
+                final long second = entry.getValue();
+                final Long previous = lookup(next, pos, first);
+                next.edit(forward, pos).put(first, second);
+                if ((previous != null) && (previous != second)
+                    && Long.valueOf(first).equals(reverseTable.lookup(next, pos, previous)))
+                {
+                    next.edit(!forward, pos).put(previous, REMOVED);
+                }
+                if (second != REMOVED) {
+                    next.edit(!forward, pos).put(second, first);
+                }
+            }
+        }
+        next.add(overlay);
+    }
+
+    private Long lookup(final OverlaySnapshot overlay, final POS pos, final long first)
+    {
+        final Long corrected = overlay.get(forward, pos).get(first);
+        if (corrected == null) {
+            return base.lookup(pos, first);
+        }
+        return (corrected == REMOVED) ? null : corrected;
+    }
+}
+
+/**
+ * Corrections for both directions of an {@link OverlayAlignmentTable}, along
+ * with the overlays they were built from.  A snapshot is only modified while
+ * it is being built, before it is published; maps for parts of speech which
+ * a build does not touch are shared with the previous snapshot.
+ */
+class OverlaySnapshot
+{
+    private final Map<POS, Map<Long, Long>> forward = new EnumMap<>(POS.class);
+
+    private final Map<POS, Map<Long, Long>> reverse = new EnumMap<>(POS.class);
+
+    // maps already copied from the previous snapshot during this build
+    private final Set<POS> editedForward = EnumSet.noneOf(POS.class);
+
+    private final Set<POS> editedReverse = EnumSet.noneOf(POS.class);
+
+    private final List<Overlay> overlays;
+
+    OverlaySnapshot()
+    {
+        for (POS pos : POS.values()) {
+            forward.put(pos, Collections.<Long, Long>emptyMap());
+            reverse.put(pos, Collections.<Long, Long>emptyMap());
+        }
+        overlays = new ArrayList<>();
+    }
+
+    OverlaySnapshot(final OverlaySnapshot previous)
+    {
+        forward.putAll(previous.forward);
+        reverse.putAll(previous.reverse);
+        overlays = new ArrayList<>(previous.overlays);
+    }
+
+    Map<Long, Long> get(final boolean isForward, final POS pos)
+    {
+        return (isForward ? forward : reverse).get(pos);
+    }
+
+    /**
+     * @return map of corrections which may be modified by the build
+     */
+    Map<Long, Long> edit(final boolean isForward, final POS pos)
+    {
+        final Map<POS, Map<Long, Long>> maps = isForward ? forward : reverse;
+        if ((isForward ? editedForward : editedReverse).add(pos)) {
+            maps.put(pos, new HashMap<>(maps.get(pos)));
+        }
+        return maps.get(pos);
+    }
+
+    List<Overlay> getOverlays()
+    {
+        return overlays;
+    }
+
+    boolean contains(final String name)
+    {
+        for (Overlay overlay : overlays) {
+            if (name.equals(overlay.name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void add(final Overlay overlay)
+    {
+        overlays.add(overlay);
+    }
+
+    /**
+     * Corrections applied to one direction, kept so that the
+     * remaining overlays can be reapplied when one is replaced.
+     */
+    static class Overlay
+    {
+        final String name;
+
+        final boolean forward;
+
+        final Map<POS, Map<Long, Long>> corrections;
+
+        Overlay(
+            final String name,
+            final boolean forward,
+            final Map<POS, Map<Long, Long>> corrections)
+        {
+            this.name = name;
+            this.forward = forward;
+            this.corrections = corrections;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package net.sf.extjwnl.data.mcr30.alignment;
+
+import net.sf.extjwnl.*;
+import net.sf.extjwnl.dictionary.*;
+import net.sf.extjwnl.data.*;
+import net.sf.extjwnl.data.mcr30.resource.*;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * Background prefetcher which loads the most frequently used senses of a
+ * dictionary (according to its <code>cntlist</code> sense frequency data)
+ * into the dictionary's caches, along with the synsets they map to in
+ * other dictionaries.
+ */
+class CacheWarmer
+{
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService executor = newExecutor();
+
+    private final Dictionary sourceDictionary;
+
+    private final List<Dictionary> targetDictionaries;
+
+    private final List<SynsetMapper> mappers = new ArrayList<>();
+
+    CacheWarmer(
+        final Dictionary sourceDictionary,
+        final List<Dictionary> targetDictionaries)
+    {
+        this.sourceDictionary = sourceDictionary;
+        this.targetDictionaries = targetDictionaries;
+    }
+
+    /**
+     * Loads mappers to the target dictionaries and reads sense frequencies,
+     * then prefetches the top senses in parallel.
+     *
+     * @param dataPath resource directory containing <code>cntlist</code>
+     * or <code>cntlist.rev</code>
+     *
+     * @param senseLimit maximum number of senses to prefetch
+     *
+     * @return future completed with the number of senses actually found
+     * and prefetched
+     */
+    CompletableFuture<Integer> warmUp(final String dataPath, final int senseLimit)
+    {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                for (Dictionary targetDictionary : targetDictionaries) {
+                    mappers.add(InterLingualIndex.loadMapper(sourceDictionary, targetDictionary));
+                }
+                return loadFrequencies(dataPath, senseLimit);
+            } catch (JWNLException ex) {
+                throw new CompletionException(ex);
+            } catch (IOException ex) {
+                throw new CompletionException(new JWNLIOException(ex));
+            }
+        }, executor).thenCompose(senses -> {
+            final AtomicInteger warmed = new AtomicInteger();
+            final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+            final int chunkSize = Math.max(1, (senses.size() + PARALLELISM - 1) / PARALLELISM);
+            for (int i = 0; i < senses.size(); i += chunkSize) {
+                final List<SenseFrequency> chunk =
+                    senses.subList(i, Math.min(i + chunkSize, senses.size()));
+                tasks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        for (SenseFrequency sense : chunk) {
+                            if (warmSense(sense)) {
+                                warmed.incrementAndGet();
+                            }
+                        }
+                    } catch (JWNLException ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, executor));
+            }
+            return CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> warmed.get());
+        });
+    }
+
+    private boolean warmSense(final SenseFrequency sense) throws JWNLException
+    {
+        // the index lookup and getSenses() pull the index entry and its
+        // synsets into the dictionary caches
+        final IndexWord indexWord = sourceDictionary.getIndexWord(sense.pos, sense.lemma);
+        if (indexWord == null) {
+            return false;
+        }
+        final List<Synset> synsets = indexWord.getSenses();
+        if ((sense.senseNumber < 1) || (sense.senseNumber > synsets.size())) {
+            return false;
+        }
+        final Synset synset = synsets.get(sense.senseNumber - 1);
+        for (SynsetMapper mapper : mappers) {
+            mapper.mapSynset(synset);
+        }
+        return true;
+    }
+
+    private static List<SenseFrequency> loadFrequencies(
+        final String dataPath,
+        final int senseLimit) throws IOException
+    {
+        final List<SenseFrequency> senses = new ArrayList<>();
+        boolean reversed = false;
+        InputStream stream = BlockCompressedResource.openResource(
+            CacheWarmer.class.getClassLoader(), String.format("%s/cntlist", dataPath));
+        if (stream == null) {
+            reversed = true;
+            stream = BlockCompressedResource.openResource(
+                CacheWarmer.class.getClassLoader(), String.format("%s/cntlist.rev", dataPath));
+            if (stream == null) {
+                // no frequency data available for this dictionary
+                return senses;
+            }
+        }
+        try(final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, "UTF-8")))
+        {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String [] fields = line.split(" ");
+                if (fields.length != 3) {
+                    continue;
+                }
+                // cntlist is "count sense_key sense_number";
+                // cntlist.rev is "sense_key sense_number count"
+                final SenseFrequency sense = reversed
+                    ? SenseFrequency.parse(fields[0], fields[1], fields[2])
+                    : SenseFrequency.parse(fields[1], fields[2], fields[0]);
+                if (sense != null) {
+                    senses.add(sense);
+                }
+            }
+        }
+        Collections.sort(senses);
+        return senses.subList(0, Math.min(senseLimit, senses.size()));
+    }
+
+    private static ExecutorService newExecutor()
+    {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            PARALLELISM, PARALLELISM, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "mcr30-cache-warmer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
+
+/**
+ * One entry from a <code>cntlist</code> file, ordered by descending count.
+ */
+class SenseFrequency implements Comparable<SenseFrequency>
+{
+    final POS pos;
+
+    final String lemma;
+
+    final int senseNumber;
+
+    final int count;
+
+    SenseFrequency(
+        final POS pos,
+        final String lemma,
+        final int senseNumber,
+        final int count)
+    {
+        this.pos = pos;
+        this.lemma = lemma;
+        this.senseNumber = senseNumber;
+        this.count = count;
+    }
+
+    /**
+     * Parses the fields of an entry.
+     *
+     * @return parsed entry, or null if the sense key is malformed
+     */
+    static SenseFrequency parse(
+        final String senseKey,
+        final String senseNumber,
+        final String count)
+    {
+        // sense key is lemma%ss_type:lex_filenum:lex_id:head_word:head_id
+        final int percent = senseKey.indexOf('%');
+        if ((percent < 1) || (percent + 1 >= senseKey.length())) {
+            return null;
+        }
+        int ssType = Character.digit(senseKey.charAt(percent + 1), 10);
+        if (ssType == POS.ADJECTIVE_SATELLITE_ID) {
+            ssType = POS.ADJECTIVE.getId();
+        }
+        final POS pos = POS.getPOSForId(ssType);
+        if (pos == null) {
+            return null;
+        }
+        try {
+            return new SenseFrequency(
+                pos,
+                senseKey.substring(0, percent),
+                Integer.parseInt(senseNumber),
+                Integer.parseInt(count));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    @Override public int compareTo(final SenseFrequency other)
+    {
+        return Integer.compare(other.count, count);
+    }
+}
@@ -0,0 +1,265 @@
+package net.sf.extjwnl.data.mcr30.alignment;
+
+import net.sf.extjwnl.*;
+import net.sf.extjwnl.dictionary.*;
+import net.sf.extjwnl.data.*;
+
+import java.util.*;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * Mapper which translates word senses from one dictionary into several
+ * target dictionaries at once.  Alignments which pass through the same
+ * intermediate tables (for example, MCR 3.0 to Princeton WordNet 3.0 and
+ * MCR 3.0 to Princeton WordNet 3.1, which is composed from the former)
+ * share those probes, so each intermediate lookup happens only once per
+ * source synset.  Obtain instances via {@link
+ * InterLingualIndex#loadFanOutMapper}.
+ *
+ *<p>
+ *
+ * A mapper is safe for access by multiple threads concurrently, but
+ * each thread should use its own {@link Result}, which can be reused
+ * across calls.
+ */
+public class FanOutMapper
+{
+    /**
+     * Offset reported for targets into which a synset cannot be mapped.
+     */
+    public static final long NO_MAPPING = -1;
+
+    private final Dictionary [] targetDictionaries;
+
+    // distinct table probes, ordered so that each probe comes after
+    // the probe supplying its input
+    private final AlignmentTable [] stepTables;
+
+    // index of the probe supplying each probe's input, or -1 for the
+    // source offset itself
+    private final int [] stepInputs;
+
+    // index of the probe producing each target's offset, or -1 when the
+    // target is the source dictionary itself
+    private final int [] targetSteps;
+
+    FanOutMapper(
+        final Dictionary [] targetDictionaries,
+        final List<List<AlignmentTable>> targetStages)
+    {
+        this.targetDictionaries = targetDictionaries.clone();
+        final List<AlignmentTable> tables = new ArrayList<>();
+        final List<Integer> inputs = new ArrayList<>();
+        targetSteps = new int[targetStages.size()];
+        for (int i = 0; i < targetSteps.length; ++i) {
+            int step = -1;
+            for (AlignmentTable table : targetStages.get(i)) {
+                step = findStep(tables, inputs, table, step);
+            }
+            targetSteps[i] = step;
+        }
+        stepTables = tables.toArray(new AlignmentTable[0]);
+        stepInputs = new int[inputs.size()];
+        for (int i = 0; i < stepInputs.length; ++i) {
+            stepInputs[i] = inputs.get(i);
+        }
+    }
+
+    private static int findStep(
+        final List<AlignmentTable> tables,
+        final List<Integer> inputs,
+        final AlignmentTable table,
+        final int input)
+    {
+        for (int i = 0; i < tables.size(); ++i) {
+            if ((tables.get(i) == table) && (inputs.get(i) == input)) {
+                return i;
+            }
+        }
+        tables.add(table);
+        inputs.add(input);
+        return tables.size() - 1;
+    }
+
+    /**
+     * @return number of target dictionaries
+     */
+    public int getTargetCount()
+    {
+        return targetDictionaries.length;
+    }
+
+    /**
+     * @param target index of a target, in the order passed to {@link
+     * InterLingualIndex#loadFanOutMapper}
+     *
+     * @return the target dictionary
+     */
+    public Dictionary getTargetDictionary(final int target)
+    {
+        return targetDictionaries[target];
+    }
+
+    /**
+     * @return number of distinct table lookups made per mapped synset
+     */
+    int getStepCount()
+    {
+        return stepTables.length;
+    }
+
+    /**
+     * Creates a result holder sized for this mapper.
+     *
+     * @return new holder, to be reused for subsequent calls
+     */
+    public Result newResult()
+    {
+        return new Result(this);
+    }
+
+    /**
+     * Maps a synset into all target dictionaries.
+     *
+     * @param sourceSynset the synset to be mapped from the source dictionary
+     *
+     * @param result holder which receives the offsets of the corresponding
+     * synsets, replacing those from any previous call
+     */
+    public void mapSynset(final Synset sourceSynset, final Result result)
+    {
+        mapOffset(sourceSynset.getPOS(), sourceSynset.getOffset(), result);
+    }
+
+    /**
+     * Maps a synset offset into all target dictionaries.
+     *
+     * @param pos part of speech of the source synset
+     *
+     * @param sourceOffset offset of the source synset
+     *
+     * @param result holder which receives the offsets of the corresponding
+     * synsets, replacing those from any previous call
+     */
+    public void mapOffset(final POS pos, final long sourceOffset, final Result result)
+    {
+        checkResult(result);
+        final long [] stepOffsets = result.stepOffsets;
+        for (int i = 0; i < stepTables.length; ++i) {
+            final long input = (stepInputs[i] < 0)
+                ? sourceOffset : stepOffsets[stepInputs[i]];
+            if (input == NO_MAPPING) {
+                stepOffsets[i] = NO_MAPPING;
+            } else {
+                final Long offset = stepTables[i].lookup(pos, input);
+                stepOffsets[i] = (offset == null) ? NO_MAPPING : offset;
+            }
+        }
+        for (int i = 0; i < targetSteps.length; ++i) {
+            result.targetOffsets[i] = (targetSteps[i] < 0)
+                ? sourceOffset : stepOffsets[targetSteps[i]];
+        }
+        result.pos = pos;
+    }
+
+    /**
+     * Maps a batch of synset offsets into all target dictionaries.
+     *
+     * @param pos part of speech of the source synsets
+     *
+     * @param sourceOffsets offsets of the source synsets
+     *
+     * @param targetOffsets receives the offsets of the corresponding
+     * synsets, indexed by target and then by position in
+     * <code>sourceOffsets</code>, or {@link #NO_MAPPING}; each row must be
+     * at least as long as <code>sourceOffsets</code>
+     */
+    public void mapOffsets(
+        final POS pos,
+        final long [] sourceOffsets,
+        final long [][] targetOffsets)
+    {
+        if (targetOffsets.length != targetSteps.length) {
+            throw new IllegalArgumentException(
+                "expected " + targetSteps.length + " target rows");
+        }
+        final Result result = newResult();
+        for (int i = 0; i < sourceOffsets.length; ++i) {
+            mapOffset(pos, sourceOffsets[i], result);
+            for (int j = 0; j < targetSteps.length; ++j) {
+                targetOffsets[j][i] = result.targetOffsets[j];
+            }
+        }
+    }
+
+    private void checkResult(final Result result)
+    {
+        if (result.mapper != this) {
+            throw new IllegalArgumentException("result belongs to another mapper");
+        }
+    }
+
+    /**
+     * Reusable holder for the targets of one mapped synset.  Not safe for
+     * access by multiple threads concurrently.
+     */
+    public static class Result
+    {
+        private final FanOutMapper mapper;
+
+        private final long [] stepOffsets;
+
+        private final long [] targetOffsets;
+
+        private POS pos;
+
+        private Result(final FanOutMapper mapper)
+        {
+            this.mapper = mapper;
+            this.stepOffsets = new long[mapper.stepTables.length];
+            this.targetOffsets = new long[mapper.targetSteps.length];
+            Arrays.fill(targetOffsets, NO_MAPPING);
+        }
+
+        /**
+         * @param target index of a target
+         *
+         * @return offset of the synset corresponding to the last mapped
+         * synset in the target dictionary, or {@link #NO_MAPPING}
+         */
+        public long getOffset(final int target)
+        {
+            return targetOffsets[target];
+        }
+
+        /**
+         * @param target index of a target
+         *
+         * @return whether the last mapped synset has a mapping
+         * in the target dictionary
+         */
+        public boolean isMapped(final int target)
+        {
+            return targetOffsets[target] != NO_MAPPING;
+        }
+
+        /**
+         * Loads the synset corresponding to the last mapped synset.
+         *
+         * @param target index of a target
+         *
+         * @return the synset in the target dictionary, or null if no
+         * mapping is available
+         *
+         * @throws JWNLException if the target dictionary could not be accessed
+         */
+        public Synset getSynset(final int target) throws JWNLException
+        {
+            if (!isMapped(target)) {
+                return null;
+            }
+            return mapper.getTargetDictionary(target).getSynsetAt(pos, targetOffsets[target]);
+        }
+    }
+}
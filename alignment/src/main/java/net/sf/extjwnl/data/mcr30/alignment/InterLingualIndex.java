@@ -3,9 +3,13 @@ package net.sf.extjwnl.data.mcr30.alignment;
 import net.sf.extjwnl.*;
 import net.sf.extjwnl.dictionary.*;
 import net.sf.extjwnl.data.*;
+import net.sf.extjwnl.data.mcr30.resource.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
 
 import net.sf.extjwnl.dictionary.Dictionary;
 
@@ -21,6 +25,8 @@ import net.sf.extjwnl.dictionary.Dictionary;
  */
 public class InterLingualIndex
 {
+    private static final Logger log = LoggerFactory.getLogger(InterLingualIndex.class);
+
     private static final String PRINCETON = "Princeton";
 
     private static final String ENG639_3 = "eng";
@@ -33,6 +39,8 @@ public class InterLingualIndex
 
     private static final Map<String, AlignmentTable> alignmentMap = new HashMap<>();
 
+    private static final Map<DictionaryVersion, SearchIndex> searchIndexMap = new HashMap<>();
+
     /**
      * Gets a dictionary for a language from a known prepackaged source.
      *
@@ -62,6 +70,47 @@ public class InterLingualIndex
         }
     }
 
+    /**
+     * Gets a dictionary as {@link #getDictionary(String, String)} does, and
+     * starts warming its caches in the background as {@link #warmUp} does,
+     * so that the first lookups after setup are already fast.  Since the
+     * warm-up is not returned, a failure while warming is logged rather
+     * than thrown; lookups then load resources on demand as usual, and
+     * report the failure themselves.  Call {@link #warmUp} directly to
+     * wait for completion or handle failures.
+     *
+     * @param wordnetSource prepackaged source; currently only
+     * <code>mcr30</code> supports warm-up
+     *
+     * @param languageCode ISO 639-3 three-letter language code, e.g.
+     * <code>spa</code>
+     *
+     * @param senseLimit maximum number of senses to prefetch, taken in order
+     * of descending frequency; if not positive, nothing is prefetched
+     *
+     * @param targetDictionaries dictionaries into which prefetched synsets
+     * should also be mapped
+     *
+     * @return loaded dictionary, whose caches may still be warming
+     *
+     * @throws JWNLException if dictionary unknown, resource unavailable,
+     * or warm-up not supported for the dictionary
+     */
+    public static Dictionary getDictionary(
+        final String wordnetSource,
+        final String languageCode,
+        final int senseLimit,
+        final Dictionary... targetDictionaries) throws JWNLException
+    {
+        final Dictionary dictionary = getDictionary(wordnetSource, languageCode);
+        warmUp(dictionary, senseLimit, targetDictionaries).whenComplete((warmed, ex) -> {
+            if (ex != null) {
+                log.warn("Cache warm-up failed for " + wordnetSource + "/" + languageCode, ex);
+            }
+        });
+        return dictionary;
+    }
+
     /**
      * Maps a synset from one dictionary to another, automatically using
      * the correct interlingual index (if one is available) for word sense
@@ -117,6 +166,253 @@ public class InterLingualIndex
             return new IdentitySynsetMapper();
         }
 
+        final AlignmentTable table = getAlignmentTable(sourceVersion, targetVersion);
+        return new AlignedSynsetMapper(table, targetDictionary);
+    }
+
+    /**
+     * Loads a mapper from one dictionary into several others at once.  This
+     * is cheaper than loading a separate mapper for each target, since
+     * lookups in alignment tables shared by more than one target (such as
+     * MCR 3.0 to Princeton WordNet 3.0, which also underlies the mapping to
+     * 3.1) are only done once per synset.  Results are returned in a
+     * reusable holder, so mapping does not allocate per synset.
+     *
+     * @param sourceDictionary the source dictionary from which synsets will be mapped
+     *
+     * @param targetDictionaries the target dictionaries into which synsets
+     * will be mapped; results are indexed in this order
+     *
+     * @return the loaded {@link FanOutMapper}
+     *
+     * @throws JWNLException if mapping or dictionary resources unavailable or
+     * could not be accessed
+     */
+    public static FanOutMapper loadFanOutMapper(
+        final Dictionary sourceDictionary,
+        final Dictionary... targetDictionaries) throws JWNLException
+    {
+        final DictionaryVersion sourceVersion =
+            new DictionaryVersion(sourceDictionary);
+        final List<List<AlignmentTable>> targetStages = new ArrayList<>();
+        for (Dictionary targetDictionary : targetDictionaries) {
+            final DictionaryVersion targetVersion =
+                new DictionaryVersion(targetDictionary);
+            final List<AlignmentTable> stages = new ArrayList<>();
+            // no stages for the no-op case
+            if (!sourceVersion.equals(targetVersion)) {
+                getAlignmentTable(sourceVersion, targetVersion).collectStages(stages);
+            }
+            targetStages.add(stages);
+        }
+        return new FanOutMapper(targetDictionaries, targetStages);
+    }
+
+    /**
+     * Applies corrections to the alignment between two dictionaries, on top
+     * of the bundled mappings and any overlays loaded previously.  The
+     * overlay is parsed completely before being applied, and then published
+     * atomically: mappers already in use see the corrections immediately,
+     * and a concurrent lookup sees either all or none of them.  Corrections
+     * are applied in both directions.
+     *
+     *<p>
+     *
+     * Each line of the overlay has the form <code>source,target</code>, as
+     * in the bundled <code>ili.csv</code> and <code>wn31-30.csv</code>.  Each
+     * synset is a part of speech key followed by either a synset offset
+     * (e.g. <code>n02065599</code>), or, for MCR dictionaries, by
+     * <code>#</code> and the synset's position in its data file (e.g.
+     * <code>n#010711</code>).  A line with an empty target removes the
+     * mapping for its source synset.  Whitespace around each column
+     * (including the carriage return of CRLF line endings) is ignored.
+     *
+     *<p>
+     *
+     * Overlays can only be loaded for alignments backed by bundled tables,
+     * i.e. between MCR 3.0 and Princeton WordNet 3.0, or between Princeton
+     * WordNet 3.1 and 3.0.  Alignments derived from these (such as MCR 3.0
+     * to Princeton WordNet 3.1) reflect the corrections automatically.
+     *
+     *<p>
+     *
+     * Overlays loaded this way accumulate, and cannot be undone
+     * individually; use {@link #loadOverlay(Dictionary, Dictionary, String,
+     * InputStream)} for overlays which may need to be replaced later.
+     *
+     * @param sourceDictionary the dictionary of the first column
+     *
+     * @param targetDictionary the dictionary of the second column
+     *
+     * @param stream overlay content in UTF-8; not closed
+     *
+     * @throws JWNLException if the overlay could not be read or parsed,
+     * or the alignment does not support overlays
+     */
+    public static void loadOverlay(
+        final Dictionary sourceDictionary,
+        final Dictionary targetDictionary,
+        final InputStream stream) throws JWNLException
+    {
+        loadOverlay(sourceDictionary, targetDictionary, null, stream);
+    }
+
+    /**
+     * Applies named corrections to the alignment between two dictionaries,
+     * as {@link #loadOverlay(Dictionary, Dictionary, InputStream)} does,
+     * except that loading an overlay under a name already in use for the
+     * alignment (in either direction) replaces the earlier overlay of that
+     * name.  Its corrections are dropped, and the new ones are applied after
+     * those of all other overlays; both happen in a single atomic swap, so
+     * a concurrent lookup never sees the alignment without either version
+     * of the overlay.
+     *
+     * @param sourceDictionary the dictionary of the first column
+     *
+     * @param targetDictionary the dictionary of the second column
+     *
+     * @param name name identifying the overlay, e.g. its file name
+     *
+     * @param stream overlay content in UTF-8; not closed
+     *
+     * @throws JWNLException if the overlay could not be read or parsed,
+     * or the alignment does not support overlays
+     */
+    public static void loadOverlay(
+        final Dictionary sourceDictionary,
+        final Dictionary targetDictionary,
+        final String name,
+        final InputStream stream) throws JWNLException
+    {
+        final DictionaryVersion sourceVersion =
+            new DictionaryVersion(sourceDictionary);
+        final DictionaryVersion targetVersion =
+            new DictionaryVersion(targetDictionary);
+        final OverlayAlignmentTable table = getOverlayTable(sourceVersion, targetVersion);
+        // synset positions are only resolved (by rescanning the data
+        // files) for parts of speech which actually use them
+        final Map<POS, List<Long>> sourcePositions = new EnumMap<>(POS.class);
+        final Map<POS, List<Long>> targetPositions = new EnumMap<>(POS.class);
+
+        final Map<POS, Map<Long, Long>> corrections = new EnumMap<>(POS.class);
+        for (POS pos : POS.values()) {
+            corrections.put(pos, new LinkedHashMap<Long, Long>());
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(stream, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                final String [] cols = line.split(",", -1);
+                if (cols.length != 2) {
+                    throw new JWNLException(new IllegalArgumentException(line));
+                }
+                cols[0] = cols[0].trim();
+                cols[1] = cols[1].trim();
+                if (cols[0].isEmpty()) {
+                    throw new JWNLException(new IllegalArgumentException(line));
+                }
+                final POS pos = POS.getPOSForKey(cols[0].charAt(0));
+                if (pos == null) {
+                    throw new JWNLException(new IllegalArgumentException(line));
+                }
+                final long sourceOffset = parseOverlaySynset(
+                    cols[0], pos, sourceVersion, sourcePositions, line);
+                final long targetOffset = cols[1].isEmpty()
+                    ? OverlayAlignmentTable.REMOVED
+                    : parseOverlaySynset(cols[1], pos, targetVersion, targetPositions, line);
+                corrections.get(pos).put(sourceOffset, targetOffset);
+            }
+        } catch (IOException ex) {
+            throw new JWNLIOException(ex);
+        }
+        table.applyOverlay(name, corrections);
+    }
+
+    /**
+     * Drops all overlays loaded for the alignment between two dictionaries,
+     * in either direction, restoring the bundled mappings in a single
+     * atomic swap.
+     *
+     * @param sourceDictionary one dictionary of the alignment
+     *
+     * @param targetDictionary the other dictionary of the alignment
+     *
+     * @throws JWNLException if the alignment does not support overlays
+     */
+    public static void clearOverlays(
+        final Dictionary sourceDictionary,
+        final Dictionary targetDictionary) throws JWNLException
+    {
+        getOverlayTable(
+            new DictionaryVersion(sourceDictionary),
+            new DictionaryVersion(targetDictionary)).clearOverlays();
+    }
+
+    private static OverlayAlignmentTable getOverlayTable(
+        final DictionaryVersion sourceVersion,
+        final DictionaryVersion targetVersion) throws JWNLException
+    {
+        final AlignmentTable table = getAlignmentTable(sourceVersion, targetVersion);
+        if (!(table instanceof OverlayAlignmentTable)) {
+            throw new JWNLException(new IllegalArgumentException(
+                constructAlignmentKey(sourceVersion, targetVersion)));
+        }
+        return (OverlayAlignmentTable) table;
+    }
+
+    private static long parseOverlaySynset(
+        final String synset,
+        final POS pos,
+        final DictionaryVersion version,
+        final Map<POS, List<Long>> positions,
+        final String line) throws JWNLException, IOException
+    {
+        if ((synset.length() < 2) || (synset.charAt(0) != pos.getKey().charAt(0))) {
+            throw new JWNLException(new IllegalArgumentException(line));
+        }
+        try {
+            if (synset.charAt(1) != '#') {
+                return Long.parseLong(synset.substring(1));
+            }
+            final int position = Integer.parseInt(synset.substring(2));
+            if (!version.getPublisher().equals("MCR")) {
+                throw new JWNLException(new IllegalArgumentException(line));
+            }
+            List<Long> offsets = positions.get(pos);
+            if (offsets == null) {
+                offsets = loadPOS(
+                    constructDataPath("mcr30", version.getLanguage()),
+                    getDataFileName(pos));
+                positions.put(pos, offsets);
+            }
+            if ((position < 0) || (position >= offsets.size())) {
+                throw new JWNLException(new IllegalArgumentException(line));
+            }
+            return offsets.get(position);
+        } catch (NumberFormatException ex) {
+            throw new JWNLException(new IllegalArgumentException(line, ex));
+        }
+    }
+
+    /**
+     * Forgets all loaded alignment tables, along with their overlays, so
+     * that tests can observe tables being loaded from scratch.
+     */
+    static void reset()
+    {
+        synchronized(alignmentMap) {
+            alignmentMap.clear();
+        }
+    }
+
+    private static AlignmentTable getAlignmentTable(
+        final DictionaryVersion sourceVersion,
+        final DictionaryVersion targetVersion) throws JWNLException
+    {
         final String alignmentKey = constructAlignmentKey(sourceVersion, targetVersion);
 
         AlignmentTable table;
@@ -138,7 +434,80 @@ public class InterLingualIndex
             }
         }
         assert(table != null);
-        return new AlignedSynsetMapper(table, targetDictionary);
+        return table;
+    }
+
+    /**
+     * Starts warming caches in the background, so that the first lookups after
+     * startup do not pay for loading resources on demand.  The most frequently
+     * used senses of <code>sourceDictionary</code> (according to the sense
+     * frequencies in its <code>cntlist</code>) are looked up in parallel, which
+     * loads their index entries and synsets into the dictionary's caches.  For
+     * each target dictionary, the corresponding alignment tables are loaded and
+     * the synsets are mapped, which loads the target synsets as well.  All of
+     * this happens on background threads; the caller may wait on the returned
+     * future or ignore it.
+     *
+     * @param sourceDictionary the dictionary whose senses should be
+     * prefetched; currently only MCR dictionaries are supported
+     *
+     * @param senseLimit maximum number of senses to prefetch, taken in order
+     * of descending frequency; if not positive, nothing is prefetched and
+     * the returned future is already completed with 0
+     *
+     * @param targetDictionaries dictionaries into which prefetched synsets
+     * should also be mapped
+     *
+     * @return future completed with the number of senses prefetched, or
+     * completed exceptionally with a {@link JWNLException} if resources
+     * could not be loaded
+     *
+     * @throws JWNLException if <code>sourceDictionary</code> is not
+     * a supported dictionary
+     */
+    public static CompletableFuture<Integer> warmUp(
+        final Dictionary sourceDictionary,
+        final int senseLimit,
+        final Dictionary... targetDictionaries) throws JWNLException
+    {
+        final String dataPath = constructMCRDataPath(sourceDictionary);
+        if (senseLimit <= 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return new CacheWarmer(sourceDictionary, Arrays.asList(targetDictionaries))
+            .warmUp(dataPath, senseLimit);
+    }
+
+    /**
+     * Loads a search index over the lemmas and glosses of a dictionary.  The
+     * index is built from the dictionary's resource files the first time it
+     * is requested, which takes a few seconds, and is then retained.
+     *
+     * @param dictionary the dictionary to be searched; currently only MCR
+     * dictionaries are supported
+     *
+     * @return the loaded {@link SearchIndex}
+     *
+     * @throws JWNLException if <code>dictionary</code> is not a supported
+     * dictionary, or its resources are unavailable
+     */
+    public static SearchIndex loadSearchIndex(final Dictionary dictionary)
+        throws JWNLException
+    {
+        final String dataPath = constructMCRDataPath(dictionary);
+        final DictionaryVersion version = new DictionaryVersion(dictionary);
+        synchronized(searchIndexMap) {
+            SearchIndex searchIndex = searchIndexMap.get(version);
+            if (searchIndex == null) {
+                try {
+                    searchIndex = SearchIndex.load(dataPath);
+                } catch (IOException ex) {
+                    throw new JWNLIOException(ex);
+                }
+                searchIndexMap.put(version, searchIndex);
+            }
+            return searchIndex;
+        }
     }
 
     private static String constructAlignmentKey(
@@ -155,6 +524,16 @@ public class InterLingualIndex
         return String.format("net/sf/extjwnl/data/%s/%s", dataParent, dataDir);
     }
 
+    private static String constructMCRDataPath(final Dictionary dictionary)
+        throws JWNLException
+    {
+        final DictionaryVersion version = new DictionaryVersion(dictionary);
+        if (!version.getPublisher().equals("MCR")) {
+            throw new JWNLException(new IllegalArgumentException(version.toString()));
+        }
+        return constructDataPath("mcr30", version.getLanguage());
+    }
+
     private static Dictionary loadDictionary(
         final String dataParent,
         final String dataDir) throws JWNLException
@@ -228,10 +607,10 @@ public class InterLingualIndex
 
         final String dataPath = constructDataPath("mcr30", "alignment");
         final String filePath = String.format("%s/wn31-30.csv", dataPath);
-        // resource is bundled with this package, so should always
-        // be present
-        try(final InputStream stream = InterLingualIndex.class.
-            getClassLoader().getResourceAsStream(filePath))
+        // resource is bundled with this package (possibly in
+        // block-compressed form), so should always be present
+        try(final InputStream stream = BlockCompressedResource.openResource(
+            InterLingualIndex.class.getClassLoader(), filePath))
         {
             final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
             while (reader.ready()) {
@@ -255,8 +634,13 @@ public class InterLingualIndex
             }
         }
 
-        alignmentMap.put(constructAlignmentKey(PRINCETON30, PRINCETON31), wn30to31);
-        alignmentMap.put(constructAlignmentKey(PRINCETON31, PRINCETON30), wn31to30);
+        final AlignmentTable overlay31to30 = OverlayAlignmentTable.wrap(wn31to30);
+        alignmentMap.put(
+            constructAlignmentKey(PRINCETON30, PRINCETON31),
+            overlay31to30.getReverse());
+        alignmentMap.put(
+            constructAlignmentKey(PRINCETON31, PRINCETON30),
+            overlay31to30);
     }
 
     private static void loadCompositionTable(
@@ -267,11 +651,19 @@ public class InterLingualIndex
             englishVersion.getPublisher(),
             englishVersion.getLanguage(),
             "3.0");
-        loadAlignmentTables(
-            nonEnglishVersion,
-            english30);
-        final AlignmentTable nonEngToEng30 = alignmentMap.get(
-            constructAlignmentKey(nonEnglishVersion, english30));
+        // reuse loaded tables, which may already carry overlays
+        final String nonEngKey = constructAlignmentKey(nonEnglishVersion, english30);
+        AlignmentTable nonEngToEng30 = alignmentMap.get(nonEngKey);
+        if (nonEngToEng30 == null) {
+            loadAlignmentTables(
+                nonEnglishVersion,
+                english30);
+            nonEngToEng30 = alignmentMap.get(nonEngKey);
+            if (nonEngToEng30 == null) {
+                // no translation table available for this language
+                return;
+            }
+        }
         final String alignmentKey = constructAlignmentKey(PRINCETON30, PRINCETON31);
         AlignmentTable eng30To31 = alignmentMap.get(alignmentKey);
         if (eng30To31 == null) {
@@ -303,18 +695,17 @@ public class InterLingualIndex
         final String dataPath = constructDataPath("mcr30", nonEnglishLanguage);
         final String iliPath = String.format("%s/ili.csv", dataPath);
 
-        try(final InputStream stream = InterLingualIndex.class.
-            getClassLoader().getResourceAsStream(iliPath))
+        try(final InputStream stream = BlockCompressedResource.openResource(
+            InterLingualIndex.class.getClassLoader(), iliPath))
         {
             if (stream == null) {
                 // no translation table available for this language
                 return;
             }
             final Map<POS, List<Long>> index = new HashMap<>();
-            index.put(POS.NOUN, loadPOS(dataPath, "data.noun"));
-            index.put(POS.VERB, loadPOS(dataPath, "data.verb"));
-            index.put(POS.ADJECTIVE, loadPOS(dataPath, "data.adj"));
-            index.put(POS.ADVERB, loadPOS(dataPath, "data.adv"));
+            for (POS pos : POS.values()) {
+                index.put(pos, loadPOS(dataPath, getDataFileName(pos)));
+            }
             final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
             while (reader.ready()) {
                 final String line = reader.readLine();
@@ -332,12 +723,27 @@ public class InterLingualIndex
                 }
             }
         }
+        final AlignmentTable overlayNonToEng = OverlayAlignmentTable.wrap(nonToEng);
         alignmentMap.put(
             constructAlignmentKey(englishVersion, nonEnglishVersion),
-            engToNon);
+            overlayNonToEng.getReverse());
         alignmentMap.put(
             constructAlignmentKey(nonEnglishVersion, englishVersion),
-            nonToEng);
+            overlayNonToEng);
+    }
+
+    private static String getDataFileName(final POS pos)
+    {
+        switch (pos) {
+        case NOUN:
+            return "data.noun";
+        case VERB:
+            return "data.verb";
+        case ADJECTIVE:
+            return "data.adj";
+        default:
+            return "data.adv";
+        }
     }
 
     private static List<Long> loadPOS(
@@ -348,8 +754,8 @@ public class InterLingualIndex
         final String resourcePath = String.format("%s/%s", dataPath, resourceName);
 
         long pos = 0;
-        try(final InputStream stream = InterLingualIndex.class.
-            getClassLoader().getResourceAsStream(resourcePath))
+        try(final InputStream stream = BlockCompressedResource.openResource(
+            InterLingualIndex.class.getClassLoader(), resourcePath))
         {
             final BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
             while (reader.ready()) {
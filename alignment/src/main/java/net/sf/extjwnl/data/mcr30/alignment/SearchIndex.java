@@ -0,0 +1,417 @@
+package net.sf.extjwnl.data.mcr30.alignment;
+
+import net.sf.extjwnl.data.*;
+import net.sf.extjwnl.data.mcr30.resource.*;
+
+import java.io.*;
+import java.text.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * In-memory search index over the lemmas and glosses of a dictionary,
+ * supporting prefix, fuzzy and gloss keyword queries without scanning the
+ * dictionary files.  Obtain instances via {@link
+ * InterLingualIndex#loadSearchIndex}.  Instances are immutable once built,
+ * and so are safe for access by multiple threads concurrently.
+ *
+ *<p>
+ *
+ * All matching is accent- and case-insensitive, and treats underscores in
+ * lemmas as spaces, so <code>rapido</code> matches <code>r&aacute;pido</code>.
+ * Queries return synset offsets, ranked best first, which can be passed to
+ * {@link net.sf.extjwnl.dictionary.Dictionary#getSynsetAt}.
+ */
+public class SearchIndex
+{
+    private static final int NGRAM_LENGTH = 3;
+
+    private static final long [] NO_RESULTS = new long[0];
+
+    private final Map<POS, PartOfSpeechIndex> indexes = new EnumMap<>(POS.class);
+
+    private SearchIndex()
+    {
+    }
+
+    /**
+     * Finds synsets containing a lemma which starts with a prefix.  Results
+     * for exact matches come first, followed by results for progressively
+     * longer lemmas, with each lemma's synsets in sense order.
+     *
+     * @param pos part of speech to search
+     *
+     * @param prefix lemma prefix
+     *
+     * @param limit maximum number of results; if not positive, no
+     * results are returned
+     *
+     * @return offsets of matching synsets
+     */
+    public long [] searchLemmaPrefix(final POS pos, final String prefix, final int limit)
+    {
+        if (limit <= 0) {
+            return NO_RESULTS;
+        }
+        final PartOfSpeechIndex index = indexes.get(pos);
+        final String key = normalize(prefix);
+        final int found = Arrays.binarySearch(index.lemmas, key);
+        final int first = (found >= 0) ? found : -(found + 1);
+        // every lemma has at least one synset, so the best limit lemmas
+        // (shortest first, then alphabetical) are enough to fill the results
+        final Comparator<Integer> order = Comparator
+            .<Integer>comparingInt(i -> index.lemmas[i].length())
+            .thenComparingInt(i -> i);
+        final PriorityQueue<Integer> best = new PriorityQueue<>(order.reversed());
+        for (int i = first; (i < index.lemmas.length) && index.lemmas[i].startsWith(key); ++i) {
+            if (best.size() < limit) {
+                best.add(i);
+            } else if (index.lemmas[i].length() < index.lemmas[best.peek()].length()) {
+                best.poll();
+                best.add(i);
+            }
+        }
+        final List<Integer> matches = new ArrayList<>(best);
+        matches.sort(order);
+        final ResultCollector results = new ResultCollector(limit);
+        for (int i = 0; (i < matches.size()) && !results.isFull(); ++i) {
+            results.addAll(index.lemmaSynsets, matches.get(i));
+        }
+        return results.toArray();
+    }
+
+    /**
+     * Finds synsets containing a lemma similar to a (possibly misspelled)
+     * query, ranked by character trigram similarity.
+     *
+     * @param pos part of speech to search
+     *
+     * @param query approximate lemma
+     *
+     * @param limit maximum number of results; if not positive, no
+     * results are returned
+     *
+     * @return offsets of matching synsets
+     */
+    public long [] searchLemmaFuzzy(final POS pos, final String query, final int limit)
+    {
+        if (limit <= 0) {
+            return NO_RESULTS;
+        }
+        final PartOfSpeechIndex index = indexes.get(pos);
+        final Set<String> queryGrams = ngrams(normalize(query));
+        final Map<Integer, Integer> overlaps = new HashMap<>();
+        for (String gram : queryGrams) {
+            final int gramIndex = Arrays.binarySearch(index.ngrams, gram);
+            if (gramIndex >= 0) {
+                index.ngramLemmas.forEach(
+                    gramIndex, lemma -> overlaps.merge(lemma, 1, Integer::sum));
+            }
+        }
+        final List<Map.Entry<Integer, Double>> scored = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : overlaps.entrySet()) {
+            // Dice coefficient over trigram sets
+            final int lemmaGrams = index.lemmaNgramCounts[entry.getKey()];
+            final double score = 2.0 * entry.getValue() / (queryGrams.size() + lemmaGrams);
+            scored.add(new AbstractMap.SimpleEntry<>(entry.getKey(), score));
+        }
+        return collectRanked(index.lemmaSynsets, scored, limit);
+    }
+
+    /**
+     * Finds synsets whose gloss contains words from a query, ranked by the
+     * summed inverse document frequency of the matching words.
+     *
+     * @param pos part of speech to search
+     *
+     * @param query one or more words
+     *
+     * @param limit maximum number of results; if not positive, no
+     * results are returned
+     *
+     * @return offsets of matching synsets
+     */
+    public long [] searchGloss(final POS pos, final String query, final int limit)
+    {
+        if (limit <= 0) {
+            return NO_RESULTS;
+        }
+        final PartOfSpeechIndex index = indexes.get(pos);
+        final Map<Integer, Double> scores = new HashMap<>();
+        for (String token : new LinkedHashSet<>(tokenize(normalize(query)))) {
+            final int tokenIndex = Arrays.binarySearch(index.glossTokens, token);
+            if (tokenIndex >= 0) {
+                final double idf = Math.log(
+                    1.0 + (double) index.glossCount / index.glossSynsets.size(tokenIndex));
+                index.glossSynsets.forEach(
+                    tokenIndex, offset -> scores.merge(offset, idf, Double::sum));
+            }
+        }
+        final List<Map.Entry<Integer, Double>> scored = new ArrayList<>(scores.entrySet());
+        scored.sort(Map.Entry.<Integer, Double>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        final long [] results = new long[Math.min(limit, scored.size())];
+        for (int i = 0; i < results.length; ++i) {
+            results[i] = scored.get(i).getKey();
+        }
+        return results;
+    }
+
+    static SearchIndex load(final String dataPath) throws IOException
+    {
+        final SearchIndex searchIndex = new SearchIndex();
+        searchIndex.indexes.put(POS.NOUN, PartOfSpeechIndex.load(dataPath, "noun"));
+        searchIndex.indexes.put(POS.VERB, PartOfSpeechIndex.load(dataPath, "verb"));
+        searchIndex.indexes.put(POS.ADJECTIVE, PartOfSpeechIndex.load(dataPath, "adj"));
+        searchIndex.indexes.put(POS.ADVERB, PartOfSpeechIndex.load(dataPath, "adv"));
+        return searchIndex;
+    }
+
+    static String normalize(final String text)
+    {
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").replace('_', ' ').toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokenize(final String normalized)
+    {
+        final List<String> tokens = new ArrayList<>();
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (token.length() > 1) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    static Set<String> ngrams(final String normalized)
+    {
+        final String padded = "^" + normalized + "$";
+        final Set<String> grams = new HashSet<>();
+        for (int i = 0; i + NGRAM_LENGTH <= padded.length(); ++i) {
+            grams.add(padded.substring(i, i + NGRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static long [] collectRanked(
+        final Postings lemmaSynsets,
+        final List<Map.Entry<Integer, Double>> scored,
+        final int limit)
+    {
+        scored.sort(Map.Entry.<Integer, Double>comparingByValue().reversed()
+            .thenComparing(Map.Entry.comparingByKey()));
+        final ResultCollector results = new ResultCollector(limit);
+        for (int i = 0; (i < scored.size()) && !results.isFull(); ++i) {
+            results.addAll(lemmaSynsets, scored.get(i).getKey());
+        }
+        return results.toArray();
+    }
+
+    /**
+     * Index over one part of speech.  Lemma keys are normalized and sorted,
+     * and lemma ids are positions in that order.
+     */
+    private static class PartOfSpeechIndex
+    {
+        String [] lemmas;
+
+        Postings lemmaSynsets;
+
+        int [] lemmaNgramCounts;
+
+        String [] ngrams;
+
+        Postings ngramLemmas;
+
+        String [] glossTokens;
+
+        Postings glossSynsets;
+
+        int glossCount;
+
+        static PartOfSpeechIndex load(final String dataPath, final String suffix)
+            throws IOException
+        {
+            final PartOfSpeechIndex index = new PartOfSpeechIndex();
+            final SortedMap<String, Postings.Builder> lemmas = new TreeMap<>();
+            readLines(dataPath, "index." + suffix, line -> {
+                final String [] fields = line.split(" ");
+                final int synsetCount = Integer.parseInt(fields[2]);
+                final Postings.Builder offsets = lemmas.computeIfAbsent(
+                    normalize(fields[0]), k -> new Postings.Builder());
+                for (int i = fields.length - synsetCount; i < fields.length; ++i) {
+                    offsets.add(Integer.parseInt(fields[i]));
+                }
+            });
+            index.lemmas = lemmas.keySet().toArray(new String[0]);
+            index.lemmaSynsets = Postings.build(lemmas.values());
+
+            final SortedMap<String, Postings.Builder> ngrams = new TreeMap<>();
+            index.lemmaNgramCounts = new int[index.lemmas.length];
+            for (int lemma = 0; lemma < index.lemmas.length; ++lemma) {
+                final Set<String> lemmaNgrams = ngrams(index.lemmas[lemma]);
+                index.lemmaNgramCounts[lemma] = lemmaNgrams.size();
+                for (String gram : lemmaNgrams) {
+                    ngrams.computeIfAbsent(gram, k -> new Postings.Builder()).add(lemma);
+                }
+            }
+            index.ngrams = ngrams.keySet().toArray(new String[0]);
+            index.ngramLemmas = Postings.build(ngrams.values());
+
+            final SortedMap<String, Postings.Builder> tokens = new TreeMap<>();
+            readLines(dataPath, "data." + suffix, line -> {
+                final int glossStart = line.indexOf(" | ");
+                if (glossStart == -1) {
+                    return;
+                }
+                final int offset = Integer.parseInt(line.substring(0, line.indexOf(' ')));
+                final String gloss =
+                    line.substring(glossStart + 3).replaceFirst("^[|\\s]+", "").trim();
+                if (gloss.equals("None")) {
+                    return;
+                }
+                ++index.glossCount;
+                for (String token : new LinkedHashSet<>(tokenize(normalize(gloss)))) {
+                    tokens.computeIfAbsent(token, k -> new Postings.Builder()).add(offset);
+                }
+            });
+            index.glossTokens = tokens.keySet().toArray(new String[0]);
+            index.glossSynsets = Postings.build(tokens.values());
+            return index;
+        }
+
+        private interface LineHandler
+        {
+            void handle(String line);
+        }
+
+        private static void readLines(
+            final String dataPath,
+            final String resourceName,
+            final LineHandler handler) throws IOException
+        {
+            final String resourcePath = String.format("%s/%s", dataPath, resourceName);
+            try(final InputStream stream = BlockCompressedResource.openResource(
+                SearchIndex.class.getClassLoader(), resourcePath))
+            {
+                if (stream == null) {
+                    throw new FileNotFoundException(resourcePath);
+                }
+                final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(stream, "UTF-8"));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    // skip license header
+                    if (!line.isEmpty() && !line.startsWith(" ")) {
+                        handler.handle(line);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates distinct synset offsets in order, up to a limit.
+     */
+    private static class ResultCollector
+    {
+        private final int limit;
+
+        private final Set<Integer> offsets = new LinkedHashSet<>();
+
+        ResultCollector(final int limit)
+        {
+            this.limit = limit;
+        }
+
+        boolean isFull()
+        {
+            return offsets.size() >= limit;
+        }
+
+        void addAll(final Postings postings, final int key)
+        {
+            postings.forEach(key, offset -> {
+                if (!isFull()) {
+                    offsets.add(offset);
+                }
+            });
+        }
+
+        long [] toArray()
+        {
+            final long [] result = new long[offsets.size()];
+            int i = 0;
+            for (int offset : offsets) {
+                result[i++] = offset;
+            }
+            return result;
+        }
+    }
+}
+
+/**
+ * Immutable postings lists for consecutive keys, stored as one shared
+ * int array with a start position per key.
+ */
+class Postings
+{
+    private final int [] starts;
+
+    private final int [] values;
+
+    private Postings(final int [] starts, final int [] values)
+    {
+        this.starts = starts;
+        this.values = values;
+    }
+
+    static Postings build(final Collection<Builder> lists)
+    {
+        final int [] starts = new int[lists.size() + 1];
+        int total = 0;
+        int key = 0;
+        for (Builder list : lists) {
+            starts[key++] = total;
+            total += list.size;
+        }
+        starts[key] = total;
+        final int [] values = new int[total];
+        key = 0;
+        for (Builder list : lists) {
+            System.arraycopy(list.values, 0, values, starts[key++], list.size);
+        }
+        return new Postings(starts, values);
+    }
+
+    int size(final int key)
+    {
+        return starts[key + 1] - starts[key];
+    }
+
+    void forEach(final int key, final IntConsumer consumer)
+    {
+        for (int i = starts[key]; i < starts[key + 1]; ++i) {
+            consumer.accept(values[i]);
+        }
+    }
+
+    /**
+     * Growable int list used while building postings.
+     */
+    static class Builder
+    {
+        private int [] values = new int[4];
+
+        private int size;
+
+        void add(final int value)
+        {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -6,6 +6,9 @@ import net.sf.extjwnl.*;
 import net.sf.extjwnl.dictionary.*;
 import net.sf.extjwnl.data.*;
 
+import java.io.*;
+import java.nio.charset.*;
+
 /**
  * JUnit tests for {@link InterLingualIndex}.
  */
@@ -110,6 +113,189 @@ public class InterLingualIndexTest
         Assert.assertNotNull(mapper);
     }
 
+    @Test
+    public void verifyOverlay() throws JWNLException
+    {
+        long zumbooruk31 = 8406649;
+        long love31 = 7558676;
+        long love30 = 7543288;
+        SynsetMapper mapper = InterLingualIndex.loadMapper(wn31, wn30);
+        Synset zumbooruk = wn31.getSynsetAt(POS.NOUN, zumbooruk31);
+        Assert.assertNull(mapper.mapSynset(zumbooruk));
+
+        // an overlay takes effect in mappers which are already loaded,
+        // in both directions; CRLF line endings are accepted
+        loadOverlay(wn31, wn30, "n08406649,n07543288\r\n");
+        Synset mapped = mapper.mapSynset(zumbooruk);
+        Assert.assertNotNull(mapped);
+        Assert.assertEquals(love30, mapped.getOffset());
+        Assert.assertEquals(zumbooruk, InterLingualIndex.mapSynset(mapped, wn31));
+
+        // later overlays can undo earlier ones; whitespace around
+        // columns is ignored
+        loadOverlay(wn31, wn30, "n08406649,\r\n n07558676 , n07543288 \r\n");
+        Assert.assertNull(mapper.mapSynset(zumbooruk));
+        Synset love = InterLingualIndex.mapSynset(mapped, wn31);
+        Assert.assertNotNull(love);
+        Assert.assertEquals(love31, love.getOffset());
+    }
+
+    @Test
+    public void verifyNamedOverlay() throws JWNLException
+    {
+        long love31 = 7558676;
+        long love30 = 7543288;
+        SynsetMapper mapper = InterLingualIndex.loadMapper(wn31, wn30);
+        Synset zumbooruk = wn31.getSynsetAt(POS.NOUN, 8406649);
+        Synset love = wn30.getSynsetAt(POS.NOUN, love30);
+        loadOverlay(wn31, wn30, "fixes", "n08406649,n07543288\n");
+        Assert.assertEquals(love, mapper.mapSynset(zumbooruk));
+        Assert.assertEquals(zumbooruk, InterLingualIndex.mapSynset(love, wn31));
+
+        // replacing a named overlay drops its earlier corrections,
+        // including those to the reverse direction
+        loadOverlay(wn31, wn30, "fixes", "");
+        Assert.assertNull(mapper.mapSynset(zumbooruk));
+        Assert.assertEquals(love31, InterLingualIndex.mapSynset(love, wn31).getOffset());
+
+        // clearing drops all overlays, whichever direction they were
+        // loaded for
+        loadOverlay(wn31, wn30, "fixes", "n08406649,n07543288\n");
+        loadOverlay(wn30, wn31, "n07543288,n08406649\n");
+        InterLingualIndex.clearOverlays(wn30, wn31);
+        Assert.assertNull(mapper.mapSynset(zumbooruk));
+        Assert.assertEquals(love31, InterLingualIndex.mapSynset(love, wn31).getOffset());
+    }
+
+    @Test
+    public void verifyDerivedOverlay() throws JWNLException
+    {
+        // an overlay on Spanish to 3.0 also applies to Spanish to 3.1,
+        // even when the latter is first loaded after the overlay; start
+        // from scratch, so that other tests cannot have loaded it already
+        InterLingualIndex.reset();
+        Synset general = spa.getIndexWord(POS.ADJECTIVE, "general").getSenses().get(1);
+        Synset general30 = InterLingualIndex.mapSynset(general, wn30);
+        Assert.assertNotNull(general30);
+        String removal = String.format("a%d,%n", general.getOffset());
+        loadOverlay(spa, wn30, removal);
+        Assert.assertNull(InterLingualIndex.mapSynset(general, wn31));
+        Assert.assertNull(InterLingualIndex.mapSynset(general, wn30));
+
+        String restoration = String.format(
+            "a%d,a%d%n", general.getOffset(), general30.getOffset());
+        loadOverlay(spa, wn30, restoration);
+        Synset general31 = InterLingualIndex.mapSynset(general, wn31);
+        Assert.assertNotNull(general31);
+        Assert.assertEquals(general, InterLingualIndex.mapSynset(general31, spa));
+        Assert.assertEquals(general30, InterLingualIndex.mapSynset(general, wn30));
+    }
+
+    @Test
+    public void verifyFanOut() throws JWNLException
+    {
+        // map from 3.1 into 3.0, into itself, and into Spanish via 3.0
+        FanOutMapper mapper = InterLingualIndex.loadFanOutMapper(wn31, wn30, wn31, spa);
+        Assert.assertEquals(3, mapper.getTargetCount());
+        FanOutMapper.Result result = mapper.newResult();
+
+        Synset claustrophobia = wn31.getSynsetAt(POS.NOUN, 14406657);
+        mapper.mapSynset(claustrophobia, result);
+        Assert.assertEquals(14383252, result.getOffset(0));
+        Assert.assertEquals(claustrophobia, result.getSynset(1));
+        Synset claustrofobia = result.getSynset(2);
+        Assert.assertNotNull(claustrofobia);
+        Assert.assertTrue(claustrofobia.containsWord("claustrofobia"));
+
+        // reuse the result for a synset which only maps to itself
+        mapper.mapOffset(POS.NOUN, 8406649, result);
+        Assert.assertFalse(result.isMapped(0));
+        Assert.assertEquals(8406649, result.getOffset(1));
+        Assert.assertFalse(result.isMapped(2));
+        Assert.assertNull(result.getSynset(2));
+
+        long [][] batch = new long[3][2];
+        mapper.mapOffsets(POS.NOUN, new long [] { 7558676, 8406649 }, batch);
+        Assert.assertEquals(7543288, batch[0][0]);
+        Assert.assertEquals(FanOutMapper.NO_MAPPING, batch[0][1]);
+        Assert.assertEquals(7558676, batch[1][0]);
+    }
+
+    @Test
+    public void verifyFanOutSharing() throws JWNLException
+    {
+        // Spanish to 3.1 is composed from Spanish to 3.0, so mapping into
+        // both takes only one lookup beyond the Spanish to 3.0 one
+        FanOutMapper mapper = InterLingualIndex.loadFanOutMapper(spa, wn30, wn31);
+        Assert.assertEquals(2, mapper.getStepCount());
+
+        FanOutMapper.Result result = mapper.newResult();
+        Synset general = spa.getIndexWord(POS.ADJECTIVE, "general").getSenses().get(1);
+        mapper.mapSynset(general, result);
+        Assert.assertEquals(InterLingualIndex.mapSynset(general, wn30), result.getSynset(0));
+        Assert.assertEquals(InterLingualIndex.mapSynset(general, wn31), result.getSynset(1));
+        Assert.assertNotNull(result.getSynset(1));
+    }
+
+    @Test
+    public void verifyWarmUp() throws Exception
+    {
+        // prefetch the most frequent Spanish sense ("general", the
+        // second adjective sense), along with its English counterpart
+        final AbstractCachingDictionary cachingSpa = (AbstractCachingDictionary) spa;
+        final AbstractCachingDictionary cachingWn30 = (AbstractCachingDictionary) wn30;
+        cachingSpa.clearCache();
+        cachingWn30.clearCache();
+        final int warmed = InterLingualIndex.warmUp(spa, 1, wn30).get();
+        Assert.assertEquals(1, warmed);
+        Assert.assertTrue(cachingSpa.getCacheSizes(DictionaryElementType.INDEX_WORD) > 0);
+        Assert.assertTrue(cachingSpa.getCacheSizes(DictionaryElementType.SYNSET) > 0);
+        final int cachedWn30 = cachingWn30.getCacheSizes(DictionaryElementType.SYNSET);
+        Assert.assertTrue(cachedWn30 > 0);
+
+        // mapping the sense again should find its counterpart in the cache
+        final Synset general = spa.getIndexWord(POS.ADJECTIVE, "general").getSenses().get(1);
+        Assert.assertNotNull(InterLingualIndex.mapSynset(general, wn30));
+        Assert.assertEquals(cachedWn30, cachingWn30.getCacheSizes(DictionaryElementType.SYNSET));
+
+        // a non-positive limit prefetches nothing
+        Assert.assertEquals(0, InterLingualIndex.warmUp(spa, -1, wn30).get().intValue());
+        Assert.assertEquals(0, InterLingualIndex.warmUp(spa, 0).get().intValue());
+    }
+
+    @Test
+    public void verifySearch() throws JWNLException
+    {
+        final SearchIndex searchIndex = InterLingualIndex.loadSearchIndex(spa);
+        Assert.assertSame(searchIndex, InterLingualIndex.loadSearchIndex(spa));
+
+        // prefix search should be accent-insensitive
+        final long [] prefixed = searchIndex.searchLemmaPrefix(POS.ADJECTIVE, "rapid", 5);
+        Assert.assertEquals(5, prefixed.length);
+        for (long offset : prefixed) {
+            final Synset synset = spa.getSynsetAt(POS.ADJECTIVE, offset);
+            Assert.assertTrue(
+                synset.containsWord("r\u00e1pido") || synset.containsWord("r\u00e1pida"));
+        }
+
+        // fuzzy search should tolerate a misspelling
+        boolean found = false;
+        for (long offset : searchIndex.searchLemmaFuzzy(POS.ADJECTIVE, "rapdo", 10)) {
+            found |= spa.getSynsetAt(POS.ADJECTIVE, offset).containsWord("r\u00e1pido");
+        }
+        Assert.assertTrue(found);
+
+        final long [] glossed = searchIndex.searchGloss(POS.VERB, "aire pulmones", 3);
+        Assert.assertTrue(glossed.length > 0);
+        Assert.assertTrue(
+            spa.getSynsetAt(POS.VERB, glossed[0]).getGloss().contains("pulmones"));
+
+        // no results for a limit which is not positive
+        Assert.assertEquals(0, searchIndex.searchLemmaPrefix(POS.ADJECTIVE, "rapid", 0).length);
+        Assert.assertEquals(0, searchIndex.searchLemmaFuzzy(POS.ADJECTIVE, "rapdo", 0).length);
+        Assert.assertEquals(0, searchIndex.searchGloss(POS.VERB, "aire pulmones", -1).length);
+    }
+
     @Test(expected = JWNLException.class)
     public void verifyUnsupportedVersion() throws JWNLException
     {
@@ -123,6 +309,27 @@ public class InterLingualIndexTest
         InterLingualIndex.loadMapper(wn31, wn21);
     }
 
+    private void loadOverlay(
+        Dictionary source,
+        Dictionary target,
+        String overlay) throws JWNLException
+    {
+        InterLingualIndex.loadOverlay(
+            source, target,
+            new ByteArrayInputStream(overlay.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void loadOverlay(
+        Dictionary source,
+        Dictionary target,
+        String name,
+        String overlay) throws JWNLException
+    {
+        InterLingualIndex.loadOverlay(
+            source, target, name,
+            new ByteArrayInputStream(overlay.getBytes(StandardCharsets.UTF_8)));
+    }
+
     private void checkDictionary(
         Dictionary dict,
         String expectedNoun,
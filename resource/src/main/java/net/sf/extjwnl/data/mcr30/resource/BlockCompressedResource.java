@@ -0,0 +1,354 @@
+package net.sf.extjwnl.data.mcr30.resource;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Read access to a resource stored in block-compressed form (see {@link
+ * BlockCompressor}).  The uncompressed content is split into fixed-size
+ * blocks which are deflated independently, and a block index in the header
+ * records where each one starts, so random access only needs to inflate the
+ * blocks it actually touches.  Recently decoded blocks are kept in a small
+ * cache.  Instances are safe for access by multiple threads concurrently.
+ *
+ *<p>
+ *
+ * Layout: magic number, block size, uncompressed length, block count,
+ * compressed offset of each block plus the end offset, followed by the
+ * deflated blocks.
+ */
+public class BlockCompressedResource
+{
+    /**
+     * Suffix appended to the name of a resource to give the name of its
+     * block-compressed counterpart.
+     */
+    public static final String EXTENSION = ".blk";
+
+    static final int MAGIC = 0x4d435242;
+
+    private static final int CACHED_BLOCKS = 8;
+
+    private final int blockSize;
+
+    private final long length;
+
+    private final int [] blockOffsets;
+
+    private final byte [] data;
+
+    private final Map<Integer, byte []> cache =
+        new LinkedHashMap<Integer, byte []>(CACHED_BLOCKS, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(
+                final Map.Entry<Integer, byte []> eldest)
+            {
+                return size() > CACHED_BLOCKS;
+            }
+        };
+
+    private BlockCompressedResource(
+        final int blockSize,
+        final long length,
+        final int [] blockOffsets,
+        final byte [] data)
+    {
+        this.blockSize = blockSize;
+        this.length = length;
+        this.blockOffsets = blockOffsets;
+        this.data = data;
+    }
+
+    /**
+     * Reads a block-compressed resource.  Only the compressed bytes are
+     * read; no block is inflated until it is accessed.
+     *
+     * @param stream stream positioned at the start of the compressed resource
+     *
+     * @return loaded resource
+     *
+     * @throws IOException if the stream could not be read or is not
+     * in block-compressed format
+     */
+    public static BlockCompressedResource load(final InputStream stream)
+        throws IOException
+    {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(stream));
+        if (input.readInt() != MAGIC) {
+            throw new IOException("not a block-compressed resource");
+        }
+        final int blockSize = input.readInt();
+        final long length = input.readLong();
+        final int blockCount = input.readInt();
+        final int [] blockOffsets = new int[blockCount + 1];
+        for (int i = 0; i <= blockCount; ++i) {
+            blockOffsets[i] = input.readInt();
+        }
+        final byte [] data = new byte[blockOffsets[blockCount]];
+        input.readFully(data);
+        return new BlockCompressedResource(blockSize, length, blockOffsets, data);
+    }
+
+    /**
+     * Opens a classpath resource for sequential reading, transparently
+     * decoding its block-compressed counterpart if the plain resource
+     * is not packaged.
+     *
+     * @param classLoader loader used to locate the resource
+     *
+     * @param resourcePath path of the plain resource
+     *
+     * @return stream over the uncompressed content, or null if neither
+     * form of the resource is available
+     *
+     * @throws IOException if the compressed resource could not be read
+     */
+    public static InputStream openResource(
+        final ClassLoader classLoader,
+        final String resourcePath) throws IOException
+    {
+        final InputStream stream = classLoader.getResourceAsStream(resourcePath);
+        if (stream != null) {
+            return stream;
+        }
+        try(final InputStream compressed =
+            classLoader.getResourceAsStream(resourcePath + EXTENSION))
+        {
+            if (compressed == null) {
+                return null;
+            }
+            return load(compressed).openStream();
+        }
+    }
+
+    /**
+     * @return length of the uncompressed content in bytes
+     */
+    public long length()
+    {
+        return length;
+    }
+
+    /**
+     * Reads a single byte of uncompressed content.
+     *
+     * @param position offset into the uncompressed content
+     *
+     * @return the byte at <code>position</code>, or -1 if past the end
+     *
+     * @throws IOException if the containing block is corrupt
+     */
+    public int byteAt(final long position) throws IOException
+    {
+        if ((position < 0) || (position >= length)) {
+            return -1;
+        }
+        final byte [] block = getBlock((int) (position / blockSize));
+        return block[(int) (position % blockSize)] & 0xff;
+    }
+
+    /**
+     * Finds the next occurrence of a byte value.
+     *
+     * @param value byte to search for
+     *
+     * @param from offset into the uncompressed content at which to start
+     *
+     * @return offset of the first occurrence at or after <code>from</code>,
+     * or -1 if there is none
+     *
+     * @throws IOException if a block is corrupt
+     */
+    public long indexOf(final byte value, final long from) throws IOException
+    {
+        long position = Math.max(from, 0);
+        while (position < length) {
+            final int blockIndex = (int) (position / blockSize);
+            final byte [] block = getBlock(blockIndex);
+            for (int i = (int) (position % blockSize); i < block.length; ++i) {
+                if (block[i] == value) {
+                    return (long) blockIndex * blockSize + i;
+                }
+            }
+            position = (long) (blockIndex + 1) * blockSize;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the next occurrence of either of two byte values, scanning
+     * each block array directly.
+     *
+     * @param first byte to search for
+     *
+     * @param second other byte to search for
+     *
+     * @param from offset into the uncompressed content at which to start
+     *
+     * @return offset of the first occurrence at or after <code>from</code>,
+     * or the content length if there is none
+     *
+     * @throws IOException if a block is corrupt
+     */
+    public long indexOfAny(final byte first, final byte second, final long from)
+        throws IOException
+    {
+        long position = Math.max(from, 0);
+        while (position < length) {
+            final int blockIndex = (int) (position / blockSize);
+            final byte [] block = getBlock(blockIndex);
+            for (int i = (int) (position % blockSize); i < block.length; ++i) {
+                if ((block[i] == first) || (block[i] == second)) {
+                    return (long) blockIndex * blockSize + i;
+                }
+            }
+            position = (long) (blockIndex + 1) * blockSize;
+        }
+        return length;
+    }
+
+    /**
+     * Copies a range of uncompressed content.
+     *
+     * @param position offset into the uncompressed content
+     *
+     * @param buffer destination
+     *
+     * @param offset start offset in <code>buffer</code>
+     *
+     * @param count maximum number of bytes to copy
+     *
+     * @return number of bytes copied, or -1 if <code>position</code>
+     * is past the end
+     *
+     * @throws IOException if a block is corrupt
+     */
+    public int read(
+        final long position,
+        final byte [] buffer,
+        final int offset,
+        final int count) throws IOException
+    {
+        if (position >= length) {
+            return -1;
+        }
+        final int total = (int) Math.min(count, length - position);
+        int copied = 0;
+        while (copied < total) {
+            final long current = position + copied;
+            final byte [] block = getBlock((int) (current / blockSize));
+            final int start = (int) (current % blockSize);
+            final int n = Math.min(total - copied, block.length - start);
+            System.arraycopy(block, start, buffer, offset + copied, n);
+            copied += n;
+        }
+        return copied;
+    }
+
+    /**
+     * Opens a stream which decodes the whole content sequentially.  Blocks
+     * decoded this way bypass the cache.
+     *
+     * @return stream over the uncompressed content
+     */
+    public InputStream openStream()
+    {
+        return new InputStream()
+        {
+            private int blockIndex = 0;
+
+            private byte [] block = new byte[0];
+
+            private int position = 0;
+
+            @Override public int read() throws IOException
+            {
+                if (!fill()) {
+                    return -1;
+                }
+                return block[position++] & 0xff;
+            }
+
+            @Override public int read(final byte [] buffer, final int offset, final int count)
+                throws IOException
+            {
+                if (count == 0) {
+                    return 0;
+                }
+                if (!fill()) {
+                    return -1;
+                }
+                final int n = Math.min(count, block.length - position);
+                System.arraycopy(block, position, buffer, offset, n);
+                position += n;
+                return n;
+            }
+
+            @Override public int available() throws IOException
+            {
+                // callers such as BufferedReader.ready() treat zero as end
+                // of input, so decode ahead at block boundaries
+                return fill() ? (block.length - position) : 0;
+            }
+
+            private boolean fill() throws IOException
+            {
+                while (position == block.length) {
+                    if (blockIndex == getBlockCount()) {
+                        return false;
+                    }
+                    block = inflateBlock(blockIndex++);
+                    position = 0;
+                }
+                return true;
+            }
+        };
+    }
+
+    private int getBlockCount()
+    {
+        return blockOffsets.length - 1;
+    }
+
+    private byte [] getBlock(final int blockIndex) throws IOException
+    {
+        synchronized(cache) {
+            final byte [] cached = cache.get(blockIndex);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // inflate outside the lock; a concurrent duplicate decode is harmless
+        final byte [] block = inflateBlock(blockIndex);
+        synchronized(cache) {
+            cache.put(blockIndex, block);
+        }
+        return block;
+    }
+
+    private byte [] inflateBlock(final int blockIndex) throws IOException
+    {
+        final long start = (long) blockIndex * blockSize;
+        final byte [] block = new byte[(int) Math.min(blockSize, length - start)];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(
+                data,
+                blockOffsets[blockIndex],
+                blockOffsets[blockIndex + 1] - blockOffsets[blockIndex]);
+            int inflated = 0;
+            while (inflated < block.length) {
+                final int n = inflater.inflate(block, inflated, block.length - inflated);
+                if ((n == 0) && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException(String.format("truncated block %d", blockIndex));
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+        return block;
+    }
+}
@@ -0,0 +1,212 @@
+package net.sf.extjwnl.data.mcr30.resource;
+
+import net.sf.extjwnl.*;
+import net.sf.extjwnl.data.*;
+import net.sf.extjwnl.dictionary.*;
+import net.sf.extjwnl.dictionary.file.*;
+import net.sf.extjwnl.princeton.file.*;
+import net.sf.extjwnl.util.*;
+import net.sf.extjwnl.util.factory.*;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * Read-only counterpart of {@link PrincetonResourceDictionaryFile} for
+ * dictionaries packaged with block-compressed resources.  Each file
+ * <code>name</code> is read from the resource <code>name.blk</code>.  Only
+ * the compressed bytes are kept on the heap, rather than the whole
+ * uncompressed file, and lookups inflate the blocks containing the lines
+ * they touch; the price is the inflate cost on cache misses.
+ */
+public class BlockCompressedResourceDictionaryFile
+    extends AbstractPrincetonRandomAccessDictionaryFile
+    implements DictionaryFileFactory<BlockCompressedResourceDictionaryFile>
+{
+    private static final byte NEWLINE = '\n';
+
+    private static final byte SPACE = ' ';
+
+    private final Charset charset;
+
+    private volatile BlockCompressedResource resource;
+
+    private volatile long firstLineOffset = -1;
+
+    public BlockCompressedResourceDictionaryFile(
+        final Dictionary dictionary,
+        final Map<String, Param> params)
+    {
+        super(dictionary, params);
+        charset = null;
+    }
+
+    public BlockCompressedResourceDictionaryFile(
+        final Dictionary dictionary,
+        final String path,
+        final POS pos,
+        final DictionaryFileType fileType,
+        final Map<String, Param> params)
+    {
+        super(dictionary, path, pos, fileType, params);
+        charset = (encoding == null) ? null : Charset.forName(encoding);
+    }
+
+    @Override public BlockCompressedResourceDictionaryFile newInstance(
+        final Dictionary dictionary,
+        final String path,
+        final POS pos,
+        final DictionaryFileType fileType)
+    {
+        return new BlockCompressedResourceDictionaryFile(
+            dictionary, path, pos, fileType, params);
+    }
+
+    @Override public void open() throws JWNLException
+    {
+        final String resourcePath =
+            path + "/" + getFilename() + BlockCompressedResource.EXTENSION;
+        try(final InputStream stream =
+            BlockCompressedResourceDictionaryFile.class.getResourceAsStream(resourcePath))
+        {
+            if (stream == null) {
+                throw new FileNotFoundException(resourcePath);
+            }
+            resource = BlockCompressedResource.load(stream);
+        } catch (IOException ex) {
+            throw new JWNLIOException(ex);
+        }
+    }
+
+    @Override public boolean isOpen()
+    {
+        return resource != null;
+    }
+
+    @Override public void close()
+    {
+        resource = null;
+    }
+
+    @Override public void save() throws JWNLException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void edit() throws JWNLException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public long getFirstLineOffset() throws JWNLException
+    {
+        if (firstLineOffset == -1) {
+            synchronized(this) {
+                if (firstLineOffset == -1) {
+                    // skip the license header, whose lines start with a space
+                    final BlockCompressedResource r = getResource();
+                    try {
+                        long offset = 0;
+                        while (r.byteAt(offset) == SPACE) {
+                            final long newline = r.indexOf(NEWLINE, offset);
+                            offset = (newline == -1) ? r.length() : newline + 1;
+                        }
+                        firstLineOffset = offset;
+                    } catch (IOException ex) {
+                        throw new JWNLIOException(ex);
+                    }
+                }
+            }
+        }
+        return firstLineOffset;
+    }
+
+    @Override public long getNextLineOffset(final long offset) throws JWNLException
+    {
+        final BlockCompressedResource r = getResource();
+        if ((offset < 0) || (offset >= r.length())) {
+            return -1;
+        }
+        try {
+            final long newline = r.indexOf(NEWLINE, offset);
+            if ((newline == -1) || (newline + 1 >= r.length())) {
+                return -1;
+            }
+            return newline + 1;
+        } catch (IOException ex) {
+            throw new JWNLIOException(ex);
+        }
+    }
+
+    @Override public PointedCharSequence readLine(final long offset) throws JWNLException
+    {
+        final BlockCompressedResource r = getResource();
+        if ((offset < 0) || (offset >= r.length())) {
+            return null;
+        }
+        try {
+            long end = r.indexOf(NEWLINE, offset);
+            if (end == -1) {
+                end = r.length();
+            }
+            return decode(r, offset, end);
+        } catch (IOException ex) {
+            throw new JWNLIOException(ex);
+        }
+    }
+
+    @Override public PointedCharSequence readWord(final long offset) throws JWNLException
+    {
+        final BlockCompressedResource r = getResource();
+        if ((offset < 0) || (offset >= r.length())) {
+            return null;
+        }
+        try {
+            return decode(r, offset, r.indexOfAny(SPACE, NEWLINE, offset));
+        } catch (IOException ex) {
+            throw new JWNLIOException(ex);
+        }
+    }
+
+    @Override public long length() throws JWNLException
+    {
+        return getResource().length();
+    }
+
+    @Override public int getOffsetLength() throws JWNLException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override public void setOffsetLength(final int length) throws JWNLException
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private BlockCompressedResource getResource() throws JWNLException
+    {
+        final BlockCompressedResource r = resource;
+        if (r == null) {
+            throw new JWNLException(
+                dictionary.getMessages().resolveMessage("PRINCETON_EXCEPTION_001"));
+        }
+        return r;
+    }
+
+    private PointedCharSequence decode(
+        final BlockCompressedResource r,
+        final long start,
+        final long end) throws IOException
+    {
+        final byte [] bytes = new byte[(int) (end - start)];
+        r.read(start, bytes, 0, bytes.length);
+        if (charset == null) {
+            return new ByteArrayCharSequence(bytes, 0, bytes.length, end);
+        }
+        return new CharBufferCharSequence(charset.decode(ByteBuffer.wrap(bytes)), end);
+    }
+}
@@ -0,0 +1,108 @@
+package net.sf.extjwnl.data.mcr30.resource;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Writer for the format read by {@link BlockCompressedResource}.  Invoked
+ * at packaging time by the <code>compressed-resources</code> build profile.
+ */
+public class BlockCompressor
+{
+    /**
+     * Default number of uncompressed bytes per block.  Smaller blocks make
+     * each seek cheaper at the expense of compression ratio.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32 * 1024;
+
+    /**
+     * Compresses files in place, replacing each <code>name</code> with
+     * <code>name.blk</code>.
+     *
+     * @param args directory containing the files, followed by the names
+     * of the files to compress
+     *
+     * @throws IOException if a file is missing or could not be rewritten
+     */
+    public static void main(final String [] args) throws IOException
+    {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                "usage: BlockCompressor <directory> <file>...");
+        }
+        final File directory = new File(args[0]);
+        for (String name : Arrays.asList(args).subList(1, args.length)) {
+            final File source = new File(directory, name);
+            if (!source.isFile()) {
+                // a partial artifact would load without error but lack data
+                throw new FileNotFoundException(source.toString());
+            }
+            final File target = new File(directory, name + BlockCompressedResource.EXTENSION);
+            try(final InputStream in = new FileInputStream(source);
+                final OutputStream out = new FileOutputStream(target))
+            {
+                compress(in, out, DEFAULT_BLOCK_SIZE);
+            }
+            if (!source.delete()) {
+                throw new IOException(String.format("could not delete %s", source));
+            }
+        }
+    }
+
+    /**
+     * Compresses the content of a stream.
+     *
+     * @param in uncompressed content; read to the end but not closed
+     *
+     * @param out destination for the compressed resource; not closed
+     *
+     * @param blockSize number of uncompressed bytes per block
+     *
+     * @throws IOException if reading or writing fails
+     */
+    public static void compress(
+        final InputStream in,
+        final OutputStream out,
+        final int blockSize) throws IOException
+    {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final byte [] buffer = new byte[blockSize];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            content.write(buffer, 0, n);
+        }
+        final byte [] bytes = content.toByteArray();
+
+        final int blockCount = (bytes.length + blockSize - 1) / blockSize;
+        final int [] blockOffsets = new int[blockCount + 1];
+        final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            for (int i = 0; i < blockCount; ++i) {
+                blockOffsets[i] = blocks.size();
+                final int start = i * blockSize;
+                deflater.reset();
+                deflater.setInput(bytes, start, Math.min(blockSize, bytes.length - start));
+                deflater.finish();
+                while (!deflater.finished()) {
+                    blocks.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        blockOffsets[blockCount] = blocks.size();
+
+        final DataOutputStream output = new DataOutputStream(out);
+        output.writeInt(BlockCompressedResource.MAGIC);
+        output.writeInt(blockSize);
+        output.writeLong(bytes.length);
+        output.writeInt(blockCount);
+        for (int offset : blockOffsets) {
+            output.writeInt(offset);
+        }
+        blocks.writeTo(output);
+        output.flush();
+    }
+}
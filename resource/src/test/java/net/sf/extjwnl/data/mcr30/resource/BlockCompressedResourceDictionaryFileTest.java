@@ -0,0 +1,95 @@
+package net.sf.extjwnl.data.mcr30.resource;
+
+import org.junit.*;
+
+import net.sf.extjwnl.*;
+import net.sf.extjwnl.data.*;
+import net.sf.extjwnl.dictionary.*;
+
+import java.io.*;
+import java.util.*;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * JUnit tests for {@link BlockCompressedResourceDictionaryFile}, loading a
+ * small fixture dictionary.  The fixture's <code>.blk</code> files were
+ * compressed with 64-byte blocks, so that lines straddle block boundaries;
+ * only <code>data.noun</code> and <code>index.noun</code> have content, and
+ * their plain forms are kept alongside for reference.
+ */
+public class BlockCompressedResourceDictionaryFileTest
+{
+    private static final String DICTIONARY_PATH = "/net/sf/extjwnl/data/mcr30/resource/dict";
+
+    private static Dictionary dictionary;
+
+    @BeforeClass
+    public static void setUpClass() throws JWNLException
+    {
+        dictionary = Dictionary.getResourceInstance(DICTIONARY_PATH + "/res_properties.xml");
+    }
+
+    @Test
+    public void verifyFixtures() throws IOException
+    {
+        // the compressed fixtures should match their plain forms
+        for (String name : new String [] { "data.noun", "index.noun" }) {
+            final BlockCompressedResource resource;
+            try(final InputStream stream = getClass().getResourceAsStream(
+                DICTIONARY_PATH + "/" + name + BlockCompressedResource.EXTENSION))
+            {
+                resource = BlockCompressedResource.load(stream);
+            }
+            Assert.assertArrayEquals(readAll(resource.openStream()),
+                readAll(getClass().getResourceAsStream(DICTIONARY_PATH + "/" + name)));
+        }
+    }
+
+    @Test
+    public void verifyLookup() throws JWNLException
+    {
+        final IndexWord indexWord = dictionary.getIndexWord(POS.NOUN, "claustrophobia");
+        Assert.assertNotNull(indexWord);
+        final List<Synset> senses = indexWord.getSenses();
+        Assert.assertEquals(1, senses.size());
+        final Synset synset = senses.get(0);
+        Assert.assertEquals(172, synset.getOffset());
+        Assert.assertEquals("a morbid fear of being closed in a confined space", synset.getGloss());
+        Assert.assertEquals(synset, dictionary.getSynsetAt(POS.NOUN, 172));
+        Assert.assertNull(dictionary.getIndexWord(POS.NOUN, "chupacabra"));
+        Assert.assertNull(dictionary.getIndexWord(POS.VERB, "fear"));
+    }
+
+    @Test
+    public void verifyIteration() throws JWNLException
+    {
+        // iteration skips the license header and stops at the last line
+        final List<String> lemmas = new ArrayList<>();
+        final Iterator<IndexWord> iterator = dictionary.getIndexWordIterator(POS.NOUN);
+        while (iterator.hasNext()) {
+            lemmas.add(iterator.next().getLemma());
+        }
+        Assert.assertEquals(Arrays.asList("acrophobia", "claustrophobia", "zoophobia"), lemmas);
+    }
+
+    @Test(expected = JWNLException.class)
+    public void verifyMissingResource() throws JWNLException
+    {
+        // a dictionary whose files are missing must fail to load
+        Dictionary.getResourceInstance(DICTIONARY_PATH + "/missing_properties.xml");
+    }
+
+    private static byte [] readAll(final InputStream stream) throws IOException
+    {
+        try(final InputStream in = stream) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte [] buffer = new byte[256];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
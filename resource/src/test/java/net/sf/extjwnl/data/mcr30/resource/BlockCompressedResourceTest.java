@@ -0,0 +1,101 @@
+package net.sf.extjwnl.data.mcr30.resource;
+
+import org.junit.*;
+
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * JUnit tests for {@link BlockCompressedResource} and {@link BlockCompressor}.
+ */
+public class BlockCompressedResourceTest
+{
+    private static final int BLOCK_SIZE = 64;
+
+    private static byte [] content;
+
+    private static BlockCompressedResource resource;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append(String.format("%08d n claustrofobia %d\n", i * 31, i));
+        }
+        content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        resource = roundTrip(content);
+    }
+
+    @Test
+    public void verifyLength()
+    {
+        Assert.assertEquals(content.length, resource.length());
+    }
+
+    @Test
+    public void verifyRandomAccess() throws IOException
+    {
+        // read ranges which start, end and straddle block boundaries
+        for (int start : new int [] { 0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 500, content.length - 3 }) {
+            final byte [] buffer = new byte[2 * BLOCK_SIZE + 5];
+            final int n = resource.read(start, buffer, 0, buffer.length);
+            Assert.assertEquals(Math.min(buffer.length, content.length - start), n);
+            for (int i = 0; i < n; ++i) {
+                Assert.assertEquals(content[start + i], buffer[i]);
+            }
+            Assert.assertEquals(content[start] & 0xff, resource.byteAt(start));
+        }
+        Assert.assertEquals(-1, resource.byteAt(content.length));
+        Assert.assertEquals(-1, resource.read(content.length, new byte[1], 0, 1));
+    }
+
+    @Test
+    public void verifyIndexOf() throws IOException
+    {
+        long expected = -1;
+        for (int i = BLOCK_SIZE - 10; i < content.length; ++i) {
+            if (content[i] == '\n') {
+                expected = i;
+                break;
+            }
+        }
+        Assert.assertEquals(expected, resource.indexOf((byte) '\n', BLOCK_SIZE - 10));
+        Assert.assertEquals(-1, resource.indexOf((byte) '#', 0));
+    }
+
+    @Test
+    public void verifyStream() throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(final InputStream in = resource.openStream()) {
+            final byte [] buffer = new byte[100];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        }
+        Assert.assertArrayEquals(content, out.toByteArray());
+    }
+
+    @Test
+    public void verifyEmpty() throws IOException
+    {
+        final BlockCompressedResource empty = roundTrip(new byte[0]);
+        Assert.assertEquals(0, empty.length());
+        Assert.assertEquals(-1, empty.openStream().read());
+    }
+
+    @Test(expected = IOException.class)
+    public void verifyBadMagic() throws IOException
+    {
+        BlockCompressedResource.load(new ByteArrayInputStream(content));
+    }
+
+    private static BlockCompressedResource roundTrip(final byte [] bytes) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BlockCompressor.compress(new ByteArrayInputStream(bytes), out, BLOCK_SIZE);
+        return BlockCompressedResource.load(new ByteArrayInputStream(out.toByteArray()));
+    }
+}